@@ -38,6 +38,7 @@ dependencies {
     implementation("org.tensorflow:tensorflow-lite-gpu:2.0.0")
     implementation("org.tensorflow:tensorflow-lite-support:0.1.0")
     implementation("androidx.activity:activity:1.9.0")
+    implementation("androidx.recyclerview:recyclerview:1.3.2")
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
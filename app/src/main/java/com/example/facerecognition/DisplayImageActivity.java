@@ -8,6 +8,7 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.Toast;
+import com.example.facerecognition.utils.BitmapPool;
 import com.example.facerecognition.utils.ImageUtils;
 
 import java.io.IOException;
@@ -21,6 +22,8 @@ public class DisplayImageActivity extends AppCompatActivity {
     private ImageView imageViewDisplay;
     private ProgressBar progressBarLoading;
     private ExecutorService executorService;
+    // Decoded through the bitmap pool, handed back in onDestroy
+    private Bitmap displayedBitmap;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -72,10 +75,16 @@ public class DisplayImageActivity extends AppCompatActivity {
             // Update the UI on the main thread after loading
             Bitmap finalBitmap = bitmap;
             runOnUiThread(() -> {
+                if (isDestroyed()) {
+                    // Closed while decoding, nothing will show the bitmap
+                    BitmapPool.getInstance().put(finalBitmap);
+                    return;
+                }
                 progressBarLoading.setVisibility(View.GONE); // Hide loading indicator
                 imageViewDisplay.setVisibility(View.VISIBLE); // Show image view
 
                 if (finalBitmap != null) {
+                    displayedBitmap = finalBitmap;
                     imageViewDisplay.setImageBitmap(finalBitmap);
                 } else {
                     Toast.makeText(this, "Failed to load image", Toast.LENGTH_SHORT).show();
@@ -93,5 +102,10 @@ public class DisplayImageActivity extends AppCompatActivity {
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdownNow(); // Attempt to stop executing tasks
         }
+        if (displayedBitmap != null) {
+            imageViewDisplay.setImageDrawable(null);
+            BitmapPool.getInstance().put(displayedBitmap);
+            displayedBitmap = null;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.example.facerecognition;
+
+import android.content.ContentUris;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.facerecognition.gallery.GalleryAdapter;
+import com.example.facerecognition.gallery.GalleryItem;
+import com.example.facerecognition.gallery.ThumbnailLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scrollable grid of the device images faces are enrolled from. Items are read from
+ * MediaStore a page at a time and thumbnails come from a ThumbnailLoader.
+ */
+public class GalleryActivity extends AppCompatActivity {
+
+    private static final String TAG = "GalleryActivity";
+    private static final int SPAN_COUNT = 4;
+    private static final int PAGE_SIZE = 200;
+    // Load the next page when the last visible item is this close to the end
+    private static final int PAGE_LOAD_THRESHOLD = SPAN_COUNT * 10;
+    // Thumbnails warmed ahead of the scroll direction
+    private static final int PREFETCH_DISTANCE = SPAN_COUNT * 4;
+
+    private RecyclerView recyclerView;
+    private GridLayoutManager layoutManager;
+    private GalleryAdapter adapter;
+    private ThumbnailLoader thumbnailLoader;
+    private ExecutorService pageExecutor;
+
+    // Only touched on pageExecutor
+    private Cursor cursor;
+    private int nextOffset = 0;
+    // Only touched on the main thread
+    private boolean pageLoading = false;
+    private boolean lastPageLoaded = false;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_gallery);
+
+        thumbnailLoader = ThumbnailLoader.getInstance(this);
+        pageExecutor = Executors.newSingleThreadExecutor();
+
+        adapter = new GalleryAdapter(thumbnailLoader, item -> {
+            Intent displayIntent = new Intent(this, DisplayImageActivity.class);
+            displayIntent.putExtra(DisplayImageActivity.EXTRA_IMAGE_URI, item.getUri().toString());
+            startActivity(displayIntent);
+        });
+        layoutManager = new GridLayoutManager(this, SPAN_COUNT);
+        recyclerView = findViewById(R.id.recycler_view_gallery);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                onGalleryScrolled(dy);
+            }
+        });
+
+        loadNextPage();
+    }
+
+    private void onGalleryScrolled(int dy) {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int itemCount = adapter.getItemCount();
+        if (dy >= 0) {
+            for (int position = last + 1; position <= last + PREFETCH_DISTANCE && position < itemCount; position++) {
+                thumbnailLoader.prefetch(adapter.getItem(position), position);
+            }
+        } else {
+            for (int position = first - 1; position >= first - PREFETCH_DISTANCE && position >= 0; position--) {
+                thumbnailLoader.prefetch(adapter.getItem(position), position);
+            }
+        }
+        // Prefetches that fell behind the scroll are no longer worth decoding
+        thumbnailLoader.retainRange(first - PREFETCH_DISTANCE, last + PREFETCH_DISTANCE);
+
+        if (last >= itemCount - PAGE_LOAD_THRESHOLD) {
+            loadNextPage();
+        }
+    }
+
+    private void loadNextPage() {
+        if (pageLoading || lastPageLoaded) {
+            return;
+        }
+        pageLoading = true;
+        pageExecutor.submit(() -> {
+            List<GalleryItem> page;
+            try {
+                page = readPage();
+            } catch (RuntimeException e) {
+                // SecurityException if the read permission was revoked, or a provider failure
+                Log.e(TAG, "Error reading gallery page", e);
+                page = null;
+            }
+            List<GalleryItem> finalPage = page;
+            runOnUiThread(() -> {
+                pageLoading = false;
+                if (isDestroyed()) {
+                    return;
+                }
+                if (finalPage == null) {
+                    lastPageLoaded = true;
+                    Toast.makeText(this, "Failed to load images", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                if (finalPage.size() < PAGE_SIZE) {
+                    lastPageLoaded = true;
+                }
+                adapter.addPage(finalPage);
+            });
+        });
+    }
+
+    private List<GalleryItem> readPage() {
+        if (cursor == null) {
+            cursor = getContentResolver().query(
+                    MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                    new String[]{MediaStore.Images.Media._ID, MediaStore.Images.Media.DATE_MODIFIED},
+                    null,
+                    null,
+                    MediaStore.Images.Media.DATE_ADDED + " DESC"
+            );
+            if (cursor == null) {
+                return null;
+            }
+        }
+        List<GalleryItem> page = new ArrayList<>(PAGE_SIZE);
+        int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+        int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_MODIFIED);
+        // The cursor only fills its window around the rows that are read, one page at a time
+        if (cursor.moveToPosition(nextOffset)) {
+            do {
+                long id = cursor.getLong(idColumn);
+                Uri uri = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
+                page.add(new GalleryItem(id, uri, cursor.getLong(dateColumn)));
+            } while (page.size() < PAGE_SIZE && cursor.moveToNext());
+        }
+        nextOffset += page.size();
+        return page;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        thumbnailLoader.onTrimMemory(level);
+        Log.d(TAG, "Thumbnails trimmed (level " + level + "): " + thumbnailLoader.getStats());
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        recyclerView.setAdapter(null);
+        // The loader outlives the activity, only drop what this activity asked for
+        thumbnailLoader.cancelAll();
+        pageExecutor.submit(() -> {
+            if (cursor != null) {
+                cursor.close();
+            }
+        });
+        pageExecutor.shutdown();
+    }
+}
@@ -10,6 +10,7 @@ import android.media.Image;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Looper;
 import android.provider.MediaStore;
@@ -34,6 +35,12 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.LifecycleOwner;
 
+import com.example.facerecognition.journal.RecognitionJournal;
+import com.example.facerecognition.recognition.FaceGallery;
+import com.example.facerecognition.recognition.RecognitionListener;
+import com.example.facerecognition.recognition.RecognitionResult;
+import com.example.facerecognition.recognition.RecognitionResultDispatcher;
+import com.example.facerecognition.utils.BitmapPool;
 import com.example.facerecognition.utils.ImageUtils;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.common.InputImage;
@@ -48,13 +55,14 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements RecognitionListener {
 
     private static final String TAG = "FaceRecognitionApp";
     private static final String[] CAMERA_PERMISSIONS = {Manifest.permission.CAMERA};
@@ -64,7 +72,12 @@ public class MainActivity extends AppCompatActivity {
                     : Manifest.permission.READ_EXTERNAL_STORAGE;
     private static final int CAMERA_REQUEST_CODE = 10;
     private static final int STORAGE_REQUEST_CODE = 11;
+    private static final int GALLERY_REQUEST_CODE = 12;
     private static final int EMBEDDING_TIMEOUT_MS = 10000;
+    private static final int STATS_INTERVAL_FRAMES = 100;
+    private static final float MATCH_THRESHOLD = 1.0f; // Adjust threshold as needed
+    // Templates from the image chooser are all enrolled under this identity
+    private static final String SELECTED_IDENTITY_ID = "selected";
 
     private PreviewView previewView;
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
@@ -74,10 +87,14 @@ public class MainActivity extends AppCompatActivity {
     private int inputImageWidth = 112;
     private int inputImageHeight = 112;
     private int embeddingSize = 128;
-    private float[] comparedFaceEmbedding = null;
+    private final FaceGallery faceGallery = new FaceGallery();
     private Handler timeoutHandler = new Handler(Looper.getMainLooper());
     private Runnable timeoutRunnable;
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
+    private final BitmapPool bitmapPool = BitmapPool.getInstance();
+    private RecognitionJournal recognitionJournal;
+    private RecognitionResultDispatcher resultDispatcher;
+    private int processedFrames = 0;
 
     private final ActivityResultLauncher<Intent> imagePickerLauncher =
             registerForActivityResult(new ActivityResultContracts.StartActivityForResult(),
@@ -103,15 +120,23 @@ public class MainActivity extends AppCompatActivity {
 
         previewView = findViewById(R.id.previewView);
         Button selectImageButton = findViewById(R.id.selectImageButton);
+        Button galleryButton = findViewById(R.id.galleryButton);
         cameraExecutor = Executors.newSingleThreadExecutor();
 
-        // Initialize Face Detector
+        // Initialize Face Detector, tracking ids are recorded in the recognition journal
         FaceDetectorOptions faceDetectorOptions =
                 new FaceDetectorOptions.Builder()
                         .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                        .enableTracking()
                         .build();
         faceDetector = FaceDetection.getClient(faceDetectorOptions);
 
+        // Recognition events are written to disk in batches by the journal's own thread
+        recognitionJournal = RecognitionJournal.getInstance(this);
+
+        // Recognition results reach the UI coalesced per track, at most once per display frame
+        resultDispatcher = new RecognitionResultDispatcher(this);
+
         // Load TFLite model
         try {
             tfliteInterpreter = new Interpreter(loadModelFile("mobile_facenet_model.tflite"));
@@ -138,12 +163,21 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        galleryButton.setOnClickListener(v -> {
+            if (ContextCompat.checkSelfPermission(this, READ_IMAGES_PERMISSION)
+                    == PackageManager.PERMISSION_GRANTED) {
+                openGallery();
+            } else {
+                ActivityCompat.requestPermissions(this, new String[]{READ_IMAGES_PERMISSION}, GALLERY_REQUEST_CODE);
+            }
+        });
+
         setupEmbeddingTimeout();
     }
 
     private void setupEmbeddingTimeout() {
         timeoutRunnable = () -> {
-            comparedFaceEmbedding = null;
+            faceGallery.clear();
             Toast.makeText(this, "Comparison embedding timed out.", Toast.LENGTH_SHORT).show();
         };
     }
@@ -198,6 +232,12 @@ public class MainActivity extends AppCompatActivity {
             } else {
                 Toast.makeText(this, "Storage permission denied.", Toast.LENGTH_SHORT).show();
             }
+        } else if (requestCode == GALLERY_REQUEST_CODE) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                openGallery();
+            } else {
+                Toast.makeText(this, "Storage permission denied.", Toast.LENGTH_SHORT).show();
+            }
         }
     }
 
@@ -264,18 +304,20 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-
+        long detectionStartNs = System.nanoTime();
         faceDetector.process(inputImage)
                 .addOnSuccessListener(faces -> {
+                    int detectionLatencyUs = elapsedMicros(detectionStartNs);
+                    Bitmap imageBitmap = null;
                     try {
                         if (!faces.isEmpty()) {
+                            // Convert the frame once and share it between all faces
+                            imageBitmap = ImageUtils.imageProxyToBitmap(imageProxy);
+                            if (imageBitmap == null) {
+                                return;
+                            }
                             for (Face face : faces) {
-                                Bitmap imageBitmap = ImageUtils.imageProxyToBitmap(imageProxy);
-                                if(imageBitmap == null) {
-                                    imageProxy.close();
-                                    isProcessing.set(false);
-                                    return;
-                                }
+                                long embeddingStartNs = System.nanoTime();
                                 Bitmap faceBitmap = ImageUtils.cropAndScaleBitmap(
                                         imageBitmap,
                                         face.getBoundingBox(),
@@ -284,16 +326,28 @@ public class MainActivity extends AppCompatActivity {
                                 );
                                 if (faceBitmap != null) {
                                     float[] currentEmbedding = getFaceEmbedding(faceBitmap);
+                                    int embeddingLatencyUs = elapsedMicros(embeddingStartNs);
                                     if (currentEmbedding != null) {
-                                        if (comparedFaceEmbedding != null) {
-                                            float distance = calculateDistance(currentEmbedding, comparedFaceEmbedding);
-                                            Log.d(TAG, "Face distance: " + distance);
-                                            if (distance <= 1.0f) { // Adjust threshold as needed
-                                                // UI updates must be on the main thread
-                                                runOnUiThread(() -> {
-                                                    Toast.makeText(MainActivity.this, "Face Matched!", Toast.LENGTH_SHORT).show();
-                                                });
-                                                comparedFaceEmbedding = null; // Reset after successful match
+                                        if (!faceGallery.isEmpty()) {
+                                            long searchStartNs = System.nanoTime();
+                                            FaceGallery.Match match = faceGallery.search(currentEmbedding, MATCH_THRESHOLD);
+                                            int searchLatencyUs = elapsedMicros(searchStartNs);
+                                            int trackId = face.getTrackingId() != null ? face.getTrackingId() : RecognitionResult.NO_TRACK_ID;
+                                            resultDispatcher.post(new RecognitionResult(trackId, match));
+                                            // Unmatched faces are journaled too, with an empty identity and NaN distance
+                                            recognitionJournal.append(
+                                                    System.currentTimeMillis(),
+                                                    trackId,
+                                                    match != null ? match.getIdentity().getId() : null,
+                                                    match != null ? match.getDistance() : Float.NaN,
+                                                    detectionLatencyUs,
+                                                    embeddingLatencyUs,
+                                                    searchLatencyUs
+                                            );
+                                            if (match != null) {
+                                                Log.d(TAG, "Face distance: " + match.getDistance()
+                                                        + " (" + faceGallery.getStats() + ")");
+                                                faceGallery.clear(); // Reset after successful match
                                                 // Ensure timeoutHandler and timeoutRunnable are managed safely
                                                 // if they interact with UI or activity lifecycle
                                                 if (timeoutHandler != null && timeoutRunnable != null) {
@@ -302,10 +356,8 @@ public class MainActivity extends AppCompatActivity {
                                             }
                                         }
                                     }
-                                    // Recycle faceBitmap if it's no longer needed to free memory
-                                    if (!faceBitmap.isRecycled()) {
-                                        faceBitmap.recycle();
-                                    }
+                                    // Return faceBitmap to the pool so the next face can reuse it
+                                    bitmapPool.put(faceBitmap);
                                 }
                             }
                         }
@@ -313,8 +365,10 @@ public class MainActivity extends AppCompatActivity {
                         // Catch any exceptions within the success listener's logic
                         Log.e(TAG, "Error during face recognition logic", e);
                     } finally {
+                        bitmapPool.put(imageBitmap);
                         imageProxy.close();
                         isProcessing.set(false);
+                        logStats();
                     }
                 })
                 .addOnFailureListener(e -> {
@@ -325,11 +379,40 @@ public class MainActivity extends AppCompatActivity {
                 });
     }
 
+    private void logStats() {
+        if (++processedFrames % STATS_INTERVAL_FRAMES == 0) {
+            Log.d(TAG, "Bitmap pool: " + bitmapPool.getStats());
+            // Whole-process native heap, including the TFLite arena and ML Kit
+            Log.d(TAG, "Native heap: " + Debug.getNativeHeapAllocatedSize() / 1024 + "KB");
+            Log.d(TAG, "Recognition journal: " + recognitionJournal.getStats());
+            Log.d(TAG, "Result delivery: " + resultDispatcher.getStats());
+        }
+    }
+
+    @Override
+    public void onRecognitionResults(List<RecognitionResult> results) {
+        // Runs on the main thread, once per display frame at most
+        for (RecognitionResult result : results) {
+            if (result.isMatched()) {
+                Toast.makeText(this, "Face Matched!", Toast.LENGTH_SHORT).show();
+                return;
+            }
+        }
+    }
+
+    private static int elapsedMicros(long startNs) {
+        return (int) ((System.nanoTime() - startNs) / 1000);
+    }
+
     private void openImageChooser() {
         Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
         imagePickerLauncher.launch(intent);
     }
 
+    private void openGallery() {
+        startActivity(new Intent(this, GalleryActivity.class));
+    }
+
     private void processSelectedImage(Uri imageUri) {
         try {
             Bitmap bitmap = ImageUtils.uriToBitmap(this, imageUri);
@@ -350,34 +433,33 @@ public class MainActivity extends AppCompatActivity {
                                         inputImageHeight
                                 );
                                 if (croppedFace != null) {
-                                    comparedFaceEmbedding = getFaceEmbedding(croppedFace);
-                                    if (comparedFaceEmbedding != null) {
-                                        Toast.makeText(this, "Face for comparison loaded.", Toast.LENGTH_SHORT).show();
+                                    float[] embedding = getFaceEmbedding(croppedFace);
+                                    bitmapPool.put(croppedFace);
+                                    if (embedding != null) {
+                                        // Every selected image adds a template, the timeout restarts from the latest one
+                                        int templateCount = faceGallery.enroll(SELECTED_IDENTITY_ID, embedding).getTemplateCount();
+                                        Toast.makeText(this, "Face for comparison loaded (" + templateCount + " templates).", Toast.LENGTH_SHORT).show();
+                                        timeoutHandler.removeCallbacks(timeoutRunnable);
                                         timeoutHandler.postDelayed(timeoutRunnable, EMBEDDING_TIMEOUT_MS);
                                     } else {
                                         Toast.makeText(this, "Error getting embedding from selected image.", Toast.LENGTH_SHORT).show();
-                                        comparedFaceEmbedding = null;
                                     }
                                 } else {
                                     Toast.makeText(this, "Error cropping face from selected image.", Toast.LENGTH_SHORT).show();
-                                    comparedFaceEmbedding = null;
                                 }
                             } else {
                                 Toast.makeText(this, "No face detected in the selected image.", Toast.LENGTH_SHORT).show();
-                                comparedFaceEmbedding = null;
                             }
                         })
                         .addOnFailureListener(e -> {
                             Toast.makeText(this, "Error detecting face in selected image: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                            comparedFaceEmbedding = null;
-                        });
+                        })
+                        .addOnCompleteListener(task -> bitmapPool.put(bitmap));
             } else {
                 Toast.makeText(this, "Error decoding selected image.", Toast.LENGTH_SHORT).show();
-                comparedFaceEmbedding = null;
             }
         } catch (IOException e) {
             Toast.makeText(this, "Error processing selected image: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-            comparedFaceEmbedding = null;
         }
     }
 
@@ -416,15 +498,18 @@ public class MainActivity extends AppCompatActivity {
         return (float) (dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2)));
     }
 
-    private float calculateDistance(float[] embedding1, float[] embedding2) {
-        if (embedding1 == null || embedding2 == null || embedding1.length != embedding2.length) {
-            return -1.0f; // Or handle error appropriately
-        }
-        float distance = 0;
-        for (int i = 0; i < embedding1.length; i++) {
-            distance += (embedding1[i] - embedding2[i]) * (embedding1[i] - embedding2[i]);
-        }
-        return (float) Math.sqrt(distance);
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        bitmapPool.trimMemory(level);
+        Log.d(TAG, "Bitmap pool trimmed (level " + level + "): " + bitmapPool.getStats());
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // The journal outlives the activity, just get buffered events to disk in the background
+        recognitionJournal.requestFlush();
     }
 
     @Override
@@ -435,5 +520,6 @@ public class MainActivity extends AppCompatActivity {
             tfliteInterpreter.close();
         }
         timeoutHandler.removeCallbacks(timeoutRunnable);
+        resultDispatcher.stop();
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.example.facerecognition.gallery;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.facerecognition.R;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ThumbnailViewHolder> {
+
+    public interface OnItemClickListener {
+        void onItemClick(GalleryItem item);
+    }
+
+    static class ThumbnailViewHolder extends RecyclerView.ViewHolder {
+        final ImageView imageView;
+
+        ThumbnailViewHolder(View itemView) {
+            super(itemView);
+            imageView = itemView.findViewById(R.id.image_view_thumbnail);
+        }
+    }
+
+    private final List<GalleryItem> items = new ArrayList<>();
+    private final ThumbnailLoader thumbnailLoader;
+    private final OnItemClickListener onItemClickListener;
+
+    public GalleryAdapter(ThumbnailLoader thumbnailLoader, OnItemClickListener onItemClickListener) {
+        this.thumbnailLoader = thumbnailLoader;
+        this.onItemClickListener = onItemClickListener;
+        setHasStableIds(true);
+    }
+
+    public void addPage(List<GalleryItem> page) {
+        int start = items.size();
+        items.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    public GalleryItem getItem(int position) {
+        return items.get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return items.get(position).getId();
+    }
+
+    @NonNull
+    @Override
+    public ThumbnailViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_gallery_thumbnail, parent, false);
+        return new ThumbnailViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ThumbnailViewHolder holder, int position) {
+        GalleryItem item = items.get(position);
+        thumbnailLoader.bind(holder.imageView, item, position);
+        holder.itemView.setOnClickListener(v -> onItemClickListener.onItemClick(item));
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ThumbnailViewHolder holder) {
+        // The item went off screen, stop loading its thumbnail
+        thumbnailLoader.unbind(holder.imageView);
+    }
+}
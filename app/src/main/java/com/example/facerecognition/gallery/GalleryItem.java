@@ -0,0 +1,32 @@
+package com.example.facerecognition.gallery;
+
+import android.net.Uri;
+
+/**
+ * One image in the gallery browser. The date is part of the thumbnail cache key so an
+ * edited image gets a fresh thumbnail.
+ */
+public class GalleryItem {
+
+    private final long id;
+    private final Uri uri;
+    private final long dateModified;
+
+    public GalleryItem(long id, Uri uri, long dateModified) {
+        this.id = id;
+        this.uri = uri;
+        this.dateModified = dateModified;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public long getDateModified() {
+        return dateModified;
+    }
+}
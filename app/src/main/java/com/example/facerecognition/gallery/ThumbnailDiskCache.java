@@ -0,0 +1,264 @@
+package com.example.facerecognition.gallery;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All thumbnails in a single append-only file of compressed images, so thousands of
+ * thumbnails cost one file instead of thousands. Each record is
+ * [id (8)][dateModified (8)][length (4)][image bytes], and the index is rebuilt on open by
+ * walking the record headers. When the file grows past its limit the most recently used
+ * thumbnails are copied into a fresh file, dropping older ones and dead records.
+ */
+public class ThumbnailDiskCache {
+
+    private static final String TAG = "ThumbnailDiskCache";
+    private static final int MAGIC = 0x46525431; // "FRT1"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8 + 8 + 4;
+
+    private static class Entry {
+        final long dateModified;
+        final long offset;
+        final int length;
+
+        Entry(long dateModified, long offset, int length) {
+            this.dateModified = dateModified;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File file;
+    private final long maxBytes;
+    // Access ordered, so compaction keeps the most recently used thumbnails
+    private Map<Long, Entry> index = newIndex();
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private long end;
+    private long compactions;
+    private long resets;
+
+    public ThumbnailDiskCache(File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        if (!readIndex()) {
+            if (channel.size() > 0) {
+                // Not a cache file or from an older format, its contents are lost
+                resets++;
+            }
+            reset();
+        }
+    }
+
+    private boolean readIndex() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.limit(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            return false;
+        }
+        long position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            long id = header.getLong(0);
+            long dateModified = header.getLong(8);
+            int length = header.getInt(16);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            // Later records for the same id replace earlier ones
+            index.put(id, new Entry(dateModified, position + RECORD_HEADER_SIZE, length));
+            position += RECORD_HEADER_SIZE + length;
+        }
+        // Drop a torn record left by an interrupted write
+        end = position;
+        channel.truncate(end);
+        return true;
+    }
+
+    /**
+     * Returns the compressed thumbnail, or null if it is missing or out of date.
+     */
+    public byte[] get(long id, long dateModified) {
+        Entry entry;
+        FileChannel currentChannel;
+        synchronized (this) {
+            entry = index.get(id);
+            currentChannel = channel;
+        }
+        if (entry == null || entry.dateModified != dateModified || currentChannel == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        try {
+            // Positional reads do not need the lock and can run on every worker at once
+            while (buffer.hasRemaining()) {
+                if (currentChannel.read(buffer, entry.offset + buffer.position()) < 0) {
+                    return null;
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Replaced by a compaction while reading, treat it as a miss
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading thumbnail: " + e.getMessage());
+            return null;
+        }
+        synchronized (this) {
+            // The file may have been compacted or reset while reading, the bytes are then stale
+            if (index.get(id) != entry) {
+                return null;
+            }
+        }
+        return buffer.array();
+    }
+
+    public synchronized void put(long id, long dateModified, byte[] data) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (end + RECORD_HEADER_SIZE + data.length > maxBytes) {
+                // Keep half the budget so the next compaction is not right around the corner
+                compact(maxBytes / 2 - RECORD_HEADER_SIZE - data.length);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+            buffer.putLong(id).putLong(dateModified).putInt(data.length).put(data);
+            buffer.flip();
+            long position = end;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            index.put(id, new Entry(dateModified, end + RECORD_HEADER_SIZE, data.length));
+            end = position;
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing thumbnail: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the newest entries that fit in targetBytes into a new file and swaps it in.
+     */
+    private void compact(long targetBytes) throws IOException {
+        List<Map.Entry<Long, Entry>> entries = new ArrayList<>(index.entrySet());
+        int first = entries.size();
+        long keptBytes = HEADER_SIZE;
+        while (first > 0) {
+            long recordBytes = RECORD_HEADER_SIZE + entries.get(first - 1).getValue().length;
+            if (keptBytes + recordBytes > targetBytes) {
+                break;
+            }
+            keptBytes += recordBytes;
+            first--;
+        }
+
+        File compactFile = new File(file.getPath() + ".tmp");
+        RandomAccessFile compactRandomAccessFile = new RandomAccessFile(compactFile, "rw");
+        FileChannel compactChannel = compactRandomAccessFile.getChannel();
+        Map<Long, Entry> compactIndex = newIndex();
+        try {
+            compactChannel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.flip();
+            long position = writeFully(compactChannel, header, 0);
+            // Oldest first, so the order rebuilt on the next open matches the access order
+            for (int i = first; i < entries.size(); i++) {
+                long id = entries.get(i).getKey();
+                Entry entry = entries.get(i).getValue();
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + entry.length);
+                record.putLong(id).putLong(entry.dateModified).putInt(entry.length);
+                readFully(record, entry.offset);
+                record.flip();
+                compactIndex.put(id, new Entry(entry.dateModified, position + RECORD_HEADER_SIZE, entry.length));
+                position = writeFully(compactChannel, record, position);
+            }
+            randomAccessFile.close();
+            if (!compactFile.renameTo(file)) {
+                throw new IOException("Cannot replace " + file + " with " + compactFile);
+            }
+            randomAccessFile = compactRandomAccessFile;
+            channel = compactChannel;
+            index = compactIndex;
+            end = position;
+            compactions++;
+        } catch (IOException e) {
+            compactRandomAccessFile.close();
+            if (!compactFile.delete()) {
+                Log.w(TAG, "Could not delete " + compactFile);
+            }
+            // Fall back to an empty cache in a freshly opened file
+            Log.e(TAG, "Error compacting thumbnail cache: " + e.getMessage());
+            randomAccessFile.close();
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+            resets++;
+            reset();
+        }
+    }
+
+    private void reset() throws IOException {
+        index.clear();
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, 0);
+        }
+        end = HEADER_SIZE;
+    }
+
+    private static long writeFully(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += target.write(buffer, position);
+        }
+        return position;
+    }
+
+    private static Map<Long, Entry> newIndex() {
+        return new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public synchronized String getStats() {
+        return "entries=" + index.size()
+                + ", size=" + end / 1024 + "KB/" + maxBytes / 1024 + "KB"
+                + ", compactions=" + compactions
+                + ", resets=" + resets;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long start = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of thumbnail cache at " + start);
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.facerecognition.gallery;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.example.facerecognition.utils.BitmapPool;
+import com.example.facerecognition.utils.ImageUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads square gallery thumbnails through two cache levels: an in-memory LRU sized in bytes
+ * and a ThumbnailDiskCache file. Misses are decoded with subsampling on a small worker pool.
+ * Requests for bound views are queued LIFO so what is on screen now runs first; prefetches
+ * queue behind them in the order they were made. Requests for the same image are shared,
+ * and requests for items that scrolled away are cancelled. The app uses one loader for
+ * the whole process, see getInstance, so both caches survive gallery recreation.
+ * All public methods must be called on the main thread.
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = "ThumbnailLoader";
+    private static final int WORKER_COUNT = 2;
+    private static final int JPEG_QUALITY = 80;
+    // Fraction of the heap the memory cache may use
+    private static final int HEAP_FRACTION = 16;
+    private static final long DISK_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final String DISK_CACHE_FILE = "thumbnails.bin";
+    // Thumbnails per shorter screen side, the gallery grid shows four columns in portrait
+    private static final int THUMBNAILS_PER_SIDE = 4;
+
+    private static ThumbnailLoader instance;
+
+    private class Request implements Runnable {
+        final GalleryItem item;
+        int position;
+        // Only touched on the main thread, the work queue reads it when the request is queued
+        boolean prefetch;
+        volatile boolean cancelled;
+
+        Request(GalleryItem item, int position, boolean prefetch) {
+            this.item = item;
+            this.position = position;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        public void run() {
+            load(this);
+        }
+    }
+
+    private final Context context;
+    private final int thumbnailSize;
+    private final LruCache<Long, Bitmap> memoryCache;
+    private final ThumbnailDiskCache diskCache;
+    private final LinkedBlockingDeque<Runnable> workQueue;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<Long, Request> inFlight = new HashMap<>();
+    private final Map<Long, ImageView> boundViews = new HashMap<>();
+
+    private long memoryHits;
+    private long diskHits;
+    private long decodes;
+    private long cancelled;
+
+    private ThumbnailLoader(Context context, int thumbnailSize) {
+        this.context = context.getApplicationContext();
+        this.thumbnailSize = thumbnailSize;
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+        this.memoryCache = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        this.diskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), DISK_CACHE_FILE), DISK_CACHE_BYTES);
+        this.workQueue = new LinkedBlockingDeque<Runnable>() {
+            @Override
+            public boolean offer(Runnable runnable) {
+                if (runnable instanceof Request && ((Request) runnable).prefetch) {
+                    return offerLast(runnable);
+                }
+                return offerFirst(runnable);
+            }
+        };
+        this.executor = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, 0L, TimeUnit.MILLISECONDS, workQueue,
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "ThumbnailWorker"));
+        executor.execute(() -> {
+            try {
+                diskCache.open();
+            } catch (IOException e) {
+                Log.e(TAG, "Error opening thumbnail cache: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Returns the process-wide loader. Its disk cache file is opened once and written by
+     * this loader's workers only, so compaction never races another writer.
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            int thumbnailSize = Math.min(metrics.widthPixels, metrics.heightPixels) / THUMBNAILS_PER_SIDE;
+            instance = new ThumbnailLoader(context, thumbnailSize);
+        }
+        return instance;
+    }
+
+    /**
+     * Shows the thumbnail for an item in the view, from memory right away or once loaded.
+     */
+    public void bind(ImageView view, GalleryItem item, int position) {
+        Object previous = view.getTag();
+        if (previous instanceof Long && (Long) previous != item.getId()) {
+            unbind(view);
+        }
+        view.setTag(item.getId());
+        Bitmap cached = memoryCache.get(item.getId());
+        if (cached != null) {
+            memoryHits++;
+            view.setImageBitmap(cached);
+            return;
+        }
+        view.setImageDrawable(null);
+        boundViews.put(item.getId(), view);
+        enqueue(item, position, false);
+    }
+
+    /**
+     * Called when a view goes off screen. Its pending load is cancelled.
+     */
+    public void unbind(ImageView view) {
+        Object tag = view.getTag();
+        view.setTag(null);
+        if (!(tag instanceof Long)) {
+            return;
+        }
+        long id = (Long) tag;
+        if (boundViews.get(id) == view) {
+            boundViews.remove(id);
+            cancel(id);
+        }
+    }
+
+    /**
+     * Warms the caches for an item that is about to scroll into view.
+     */
+    public void prefetch(GalleryItem item, int position) {
+        if (memoryCache.get(item.getId()) == null) {
+            enqueue(item, position, true);
+        }
+    }
+
+    /**
+     * Cancels every load outside the given adapter positions that no view is waiting for.
+     */
+    public void retainRange(int first, int last) {
+        Iterator<Map.Entry<Long, Request>> iterator = inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next().getValue();
+            if ((request.position < first || request.position > last)
+                    && !boundViews.containsKey(request.item.getId())) {
+                cancelRequest(request);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void enqueue(GalleryItem item, int position, boolean prefetch) {
+        Request request = inFlight.get(item.getId());
+        if (request != null) {
+            request.position = position;
+            if (!prefetch && request.prefetch) {
+                // A view now waits for it, move it ahead of the remaining prefetches
+                request.prefetch = false;
+                if (workQueue.remove(request)) {
+                    workQueue.offerFirst(request);
+                }
+            }
+            return;
+        }
+        Request newRequest = new Request(item, position, prefetch);
+        inFlight.put(item.getId(), newRequest);
+        executor.execute(newRequest);
+    }
+
+    private void cancel(long id) {
+        Request request = inFlight.remove(id);
+        if (request != null) {
+            cancelRequest(request);
+        }
+    }
+
+    private void cancelRequest(Request request) {
+        request.cancelled = true;
+        executor.remove(request);
+        cancelled++;
+    }
+
+    private void load(Request request) {
+        if (request.cancelled) {
+            return;
+        }
+        GalleryItem item = request.item;
+        Bitmap thumbnail = null;
+        byte[] data = diskCache.get(item.getId(), item.getDateModified());
+        if (data != null) {
+            thumbnail = decodeThumbnail(data);
+        }
+        boolean fromDisk = thumbnail != null;
+        if (thumbnail == null && !request.cancelled) {
+            thumbnail = decodeFromSource(request);
+        }
+        Bitmap result = thumbnail;
+        mainHandler.post(() -> deliver(request, result, fromDisk));
+    }
+
+    private Bitmap decodeThumbnail(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // Thumbnails have no alpha, RGB_565 halves their memory
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    private Bitmap decodeFromSource(Request request) {
+        Bitmap source;
+        try {
+            source = ImageUtils.decodeSampledBitmap(context, request.item.getUri(), thumbnailSize);
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Error decoding " + request.item.getUri() + ": " + e.getMessage());
+            return null;
+        }
+        if (source == null) {
+            return null;
+        }
+        Bitmap thumbnail = centerCrop(source, thumbnailSize);
+        BitmapPool.getInstance().put(source);
+        if (request.cancelled) {
+            return thumbnail;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        diskCache.put(request.item.getId(), request.item.getDateModified(), out.toByteArray());
+        return thumbnail;
+    }
+
+    private static Bitmap centerCrop(Bitmap source, int size) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        int left = (source.getWidth() - side) / 2;
+        int top = (source.getHeight() - side) / 2;
+        Bitmap thumbnail = Bitmap.createBitmap(size, size, Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(thumbnail);
+        canvas.drawBitmap(
+                source,
+                new Rect(left, top, left + side, top + side),
+                new Rect(0, 0, size, size),
+                new Paint(Paint.FILTER_BITMAP_FLAG)
+        );
+        return thumbnail;
+    }
+
+    private void deliver(Request request, Bitmap thumbnail, boolean fromDisk) {
+        long id = request.item.getId();
+        if (inFlight.get(id) == request) {
+            inFlight.remove(id);
+        }
+        if (thumbnail == null) {
+            return;
+        }
+        if (fromDisk) {
+            diskHits++;
+        } else {
+            decodes++;
+        }
+        memoryCache.put(id, thumbnail);
+        ImageView view = boundViews.remove(id);
+        if (view != null && Long.valueOf(id).equals(view.getTag())) {
+            view.setImageBitmap(thumbnail);
+        }
+    }
+
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            memoryCache.evictAll();
+        }
+    }
+
+    public String getStats() {
+        return "memoryHits=" + memoryHits
+                + ", diskHits=" + diskHits
+                + ", decodes=" + decodes
+                + ", cancelled=" + cancelled
+                + ", memory=" + memoryCache.size() / 1024 + "KB/" + memoryCache.maxSize() / 1024 + "KB"
+                + ", disk: " + diskCache.getStats();
+    }
+
+    /**
+     * Cancels every pending load and forgets the bound views, called when the gallery goes
+     * away. Loads already running finish in the background.
+     */
+    public void cancelAll() {
+        for (Request request : inFlight.values()) {
+            cancelRequest(request);
+        }
+        inFlight.clear();
+        boundViews.clear();
+    }
+}
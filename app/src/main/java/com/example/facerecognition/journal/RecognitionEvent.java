@@ -0,0 +1,113 @@
+package com.example.facerecognition.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One recognition attempt as stored in the journal. Records have a fixed size so the
+ * journal can be appended and scanned without any framing.
+ */
+public class RecognitionEvent {
+
+    public static final int IDENTITY_ID_BYTES = 24;
+    // timestamp, track id, identity id, distance, detection/embedding/search latency
+    public static final int RECORD_SIZE = 8 + 4 + IDENTITY_ID_BYTES + 4 + 4 + 4 + 4;
+
+    private final long timestampMs;
+    private final int trackId;
+    private final String identityId;
+    private final float distance;
+    private final int detectionLatencyUs;
+    private final int embeddingLatencyUs;
+    private final int searchLatencyUs;
+
+    public RecognitionEvent(long timestampMs, int trackId, String identityId, float distance,
+                            int detectionLatencyUs, int embeddingLatencyUs, int searchLatencyUs) {
+        this.timestampMs = timestampMs;
+        this.trackId = trackId;
+        this.identityId = identityId != null ? identityId : "";
+        this.distance = distance;
+        this.detectionLatencyUs = detectionLatencyUs;
+        this.embeddingLatencyUs = embeddingLatencyUs;
+        this.searchLatencyUs = searchLatencyUs;
+    }
+
+    /**
+     * Writes the record at the buffer's position. Identity ids longer than
+     * IDENTITY_ID_BYTES are truncated, shorter ones are zero padded.
+     */
+    static void write(ByteBuffer buffer, long timestampMs, int trackId, byte[] identityId, float distance,
+                      int detectionLatencyUs, int embeddingLatencyUs, int searchLatencyUs) {
+        buffer.putLong(timestampMs);
+        buffer.putInt(trackId);
+        int idLength = Math.min(identityId.length, IDENTITY_ID_BYTES);
+        buffer.put(identityId, 0, idLength);
+        for (int i = idLength; i < IDENTITY_ID_BYTES; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.putFloat(distance);
+        buffer.putInt(detectionLatencyUs);
+        buffer.putInt(embeddingLatencyUs);
+        buffer.putInt(searchLatencyUs);
+    }
+
+    static RecognitionEvent read(ByteBuffer buffer, byte[] idScratch) {
+        long timestampMs = buffer.getLong();
+        int trackId = buffer.getInt();
+        buffer.get(idScratch, 0, IDENTITY_ID_BYTES);
+        int idLength = 0;
+        while (idLength < IDENTITY_ID_BYTES && idScratch[idLength] != 0) {
+            idLength++;
+        }
+        String identityId = new String(idScratch, 0, idLength, StandardCharsets.UTF_8);
+        return new RecognitionEvent(
+                timestampMs,
+                trackId,
+                identityId,
+                buffer.getFloat(),
+                buffer.getInt(),
+                buffer.getInt(),
+                buffer.getInt()
+        );
+    }
+
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    /**
+     * RecognitionResult.NO_TRACK_ID when the face was not tracked.
+     */
+    public int getTrackId() {
+        return trackId;
+    }
+
+    /**
+     * Empty when the face did not match any identity.
+     */
+    public String getIdentityId() {
+        return identityId;
+    }
+
+    public float getDistance() {
+        return distance;
+    }
+
+    public int getDetectionLatencyUs() {
+        return detectionLatencyUs;
+    }
+
+    public int getEmbeddingLatencyUs() {
+        return embeddingLatencyUs;
+    }
+
+    public int getSearchLatencyUs() {
+        return searchLatencyUs;
+    }
+
+    @Override
+    public String toString() {
+        return timestampMs + "," + trackId + "," + identityId + "," + distance + ","
+                + detectionLatencyUs + "," + embeddingLatencyUs + "," + searchLatencyUs;
+    }
+}
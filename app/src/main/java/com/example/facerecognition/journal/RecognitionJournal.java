@@ -0,0 +1,340 @@
+package com.example.facerecognition.journal;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only journal of recognition events. Producers copy fixed-size records into an
+ * in-memory ring buffer and return immediately; a background writer drains the ring in
+ * batches through a FileChannel and rotates to a new segment file once the current one
+ * reaches its size limit. Old segments are deleted once all segments together exceed
+ * a byte budget. When the ring is full new events are dropped and counted instead of
+ * blocking the caller. The app uses one journal for the whole process, see getInstance.
+ */
+public class RecognitionJournal {
+
+    private static final String TAG = "RecognitionJournal";
+    static final int MAGIC = 0x46524A31; // "FRJ1"
+    static final int VERSION = 1;
+    // magic, version, record size
+    static final int HEADER_SIZE = 12;
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".bin";
+    private static final String DIRECTORY = "recognition_journal";
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    private static final long DEFAULT_MAX_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final long DEFAULT_MAX_TOTAL_BYTES = 64 * 1024 * 1024;
+    private static final byte[] NO_IDENTITY = new byte[0];
+
+    private static RecognitionJournal instance;
+
+    private final File directory;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long maxSegmentBytes;
+    private final long maxTotalBytes;
+
+    private final Object lock = new Object();
+    private final ByteBuffer ring;
+    private final ByteBuffer batch;
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+    private boolean flushRequested = false;
+    private Thread writerThread;
+
+    // Only touched by the writer thread
+    private FileChannel channel;
+    private int segmentIndex;
+    private long segmentBytes;
+
+    private long appended;
+    private long dropped;
+    private long written;
+    private long batches;
+    private long writeFailures;
+
+    public RecognitionJournal(File directory) {
+        this(directory, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS,
+                DEFAULT_MAX_SEGMENT_BYTES, DEFAULT_MAX_TOTAL_BYTES);
+    }
+
+    public RecognitionJournal(File directory, int capacity, int batchSize, long flushIntervalMs,
+                              long maxSegmentBytes, long maxTotalBytes) {
+        if (capacity <= 0 || batchSize <= 0 || batchSize > capacity) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity + " / batch size " + batchSize);
+        }
+        if (maxSegmentBytes < HEADER_SIZE + RecognitionEvent.RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size " + maxSegmentBytes + " cannot hold a record");
+        }
+        if (maxTotalBytes < maxSegmentBytes) {
+            throw new IllegalArgumentException("Total size " + maxTotalBytes + " is below the segment size " + maxSegmentBytes);
+        }
+        this.directory = directory;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.ring = ByteBuffer.allocate(capacity * RecognitionEvent.RECORD_SIZE);
+        this.batch = ByteBuffer.allocateDirect(capacity * RecognitionEvent.RECORD_SIZE);
+    }
+
+    /**
+     * Returns the process-wide journal, started on first use. It lives as long as the process
+     * so activity recreation neither starts a new segment nor waits for a final flush;
+     * at most one flush interval of events is lost if the process is killed.
+     */
+    public static synchronized RecognitionJournal getInstance(Context context) {
+        if (instance == null) {
+            instance = new RecognitionJournal(new File(context.getApplicationContext().getFilesDir(), DIRECTORY));
+            instance.start();
+        }
+        return instance;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (writerThread != null) {
+                return;
+            }
+            writerThread = new Thread(this::runWriter, "RecognitionJournalWriter");
+            writerThread.setPriority(Thread.MIN_PRIORITY);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * Queues an event without touching the disk. Returns false if the event was dropped
+     * because the ring buffer is full or the journal is closed.
+     */
+    public boolean append(long timestampMs, int trackId, String identityId, float distance,
+                          int detectionLatencyUs, int embeddingLatencyUs, int searchLatencyUs) {
+        byte[] idBytes = identityId != null ? identityId.getBytes(StandardCharsets.UTF_8) : NO_IDENTITY;
+        synchronized (lock) {
+            if (closed || count == capacity) {
+                dropped++;
+                return false;
+            }
+            int tail = (head + count) % capacity;
+            ring.position(tail * RecognitionEvent.RECORD_SIZE);
+            RecognitionEvent.write(ring, timestampMs, trackId, idBytes, distance,
+                    detectionLatencyUs, embeddingLatencyUs, searchLatencyUs);
+            count++;
+            appended++;
+            if (count >= batchSize) {
+                lock.notifyAll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Asks the writer to write out buffered events now, without waiting for it.
+     */
+    public void requestFlush() {
+        synchronized (lock) {
+            flushRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops accepting events, flushes what is buffered and waits for the writer to finish.
+     */
+    public void close() {
+        Thread thread;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+            thread = writerThread;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            int records;
+            synchronized (lock) {
+                try {
+                    while (!closed && !flushRequested && count < batchSize) {
+                        lock.wait(flushIntervalMs);
+                        if (count > 0) {
+                            // Either a full batch or the flush interval elapsed
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                flushRequested = false;
+                if (count == 0) {
+                    if (closed) {
+                        break;
+                    }
+                    continue;
+                }
+                records = drainToBatch();
+            }
+            writeBatch(records);
+        }
+        closeSegment();
+    }
+
+    private int drainToBatch() {
+        int records = count;
+        int firstRun = Math.min(records, capacity - head);
+        ByteBuffer source = ring.duplicate();
+        batch.clear();
+        source.limit((head + firstRun) * RecognitionEvent.RECORD_SIZE);
+        source.position(head * RecognitionEvent.RECORD_SIZE);
+        batch.put(source);
+        if (records > firstRun) {
+            // The batch wraps around the end of the ring
+            source.limit((records - firstRun) * RecognitionEvent.RECORD_SIZE);
+            source.position(0);
+            batch.put(source);
+        }
+        batch.flip();
+        head = (head + records) % capacity;
+        count = 0;
+        return records;
+    }
+
+    private void writeBatch(int records) {
+        try {
+            while (batch.hasRemaining()) {
+                if (channel == null || segmentBytes + RecognitionEvent.RECORD_SIZE > maxSegmentBytes) {
+                    openNextSegment();
+                }
+                // Only write whole records that still fit in the current segment
+                int fitting = (int) ((maxSegmentBytes - segmentBytes) / RecognitionEvent.RECORD_SIZE);
+                int chunk = Math.min(batch.remaining(), fitting * RecognitionEvent.RECORD_SIZE);
+                ByteBuffer slice = batch.duplicate();
+                slice.limit(slice.position() + chunk);
+                while (slice.hasRemaining()) {
+                    segmentBytes += channel.write(slice);
+                }
+                batch.position(slice.position());
+            }
+            synchronized (lock) {
+                written += records;
+                batches++;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing journal batch: " + e.getMessage());
+            synchronized (lock) {
+                writeFailures++;
+            }
+            // Start over in a fresh segment next time instead of appending after a partial write
+            closeSegment();
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        closeSegment();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        if (segmentIndex == 0) {
+            // Never append to segments from a previous run, they may end in a torn record
+            segmentIndex = lastSegmentIndex(directory);
+        }
+        segmentIndex++;
+        File file = new File(directory, segmentName(segmentIndex));
+        channel = new FileOutputStream(file).getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RecognitionEvent.RECORD_SIZE);
+        header.flip();
+        segmentBytes = 0;
+        while (header.hasRemaining()) {
+            segmentBytes += channel.write(header);
+        }
+        deleteOldSegments();
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing journal segment: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private void deleteOldSegments() {
+        // Retention is by bytes, so many short sessions with tiny segments keep their history
+        List<File> segments = RecognitionJournalReader.listSegments(directory);
+        long totalBytes = 0;
+        for (File segment : segments) {
+            totalBytes += segment.length();
+        }
+        // The last segment is the one just opened, it is never deleted
+        for (int i = 0; i < segments.size() - 1 && totalBytes > maxTotalBytes; i++) {
+            long length = segments.get(i).length();
+            if (segments.get(i).delete()) {
+                totalBytes -= length;
+            } else {
+                Log.w(TAG, "Could not delete old journal segment " + segments.get(i));
+            }
+        }
+    }
+
+    static String segmentName(int index) {
+        return String.format(Locale.US, "%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    static int segmentIndex(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private static int lastSegmentIndex(File directory) {
+        List<File> segments = RecognitionJournalReader.listSegments(directory);
+        return segments.isEmpty() ? 0 : segmentIndex(segments.get(segments.size() - 1));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public String getStats() {
+        synchronized (lock) {
+            return "appended=" + appended
+                    + ", dropped=" + dropped
+                    + ", written=" + written
+                    + ", batches=" + batches
+                    + ", pending=" + count
+                    + ", writeFailures=" + writeFailures;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.facerecognition.journal;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sequential reader over all journal segments, oldest first. Segments are read in large
+ * chunks through a FileChannel; a trailing partial record left by an interrupted write
+ * is ignored.
+ */
+public class RecognitionJournalReader {
+
+    private static final String TAG = "RecognitionJournal";
+    private static final int RECORDS_PER_READ = 1024;
+
+    public interface EventVisitor {
+        void visit(RecognitionEvent event) throws IOException;
+    }
+
+    private final File directory;
+
+    public RecognitionJournalReader(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Visits every event in the journal and returns how many were read.
+     */
+    public long read(EventVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECORDS_PER_READ * RecognitionEvent.RECORD_SIZE);
+        byte[] idScratch = new byte[RecognitionEvent.IDENTITY_ID_BYTES];
+        long events = 0;
+        for (File segment : listSegments(directory)) {
+            FileInputStream inputStream = new FileInputStream(segment);
+            try {
+                FileChannel channel = inputStream.getChannel();
+                if (!readHeader(channel, segment)) {
+                    continue;
+                }
+                buffer.clear();
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.remaining() >= RecognitionEvent.RECORD_SIZE) {
+                        visitor.visit(RecognitionEvent.read(buffer, idScratch));
+                        events++;
+                    }
+                    // Keep a record split across reads for the next round
+                    buffer.compact();
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+        return events;
+    }
+
+    public List<RecognitionEvent> readAll() throws IOException {
+        final List<RecognitionEvent> events = new ArrayList<>();
+        read(events::add);
+        return events;
+    }
+
+    /**
+     * Writes every event as a CSV row for export.
+     */
+    public long exportCsv(final Writer writer) throws IOException {
+        writer.write("timestamp_ms,track_id,identity_id,distance,detection_us,embedding_us,search_us\n");
+        return read(event -> {
+            writer.write(event.toString());
+            writer.write('\n');
+        });
+    }
+
+    private static boolean readHeader(FileChannel channel, File segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RecognitionJournal.HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) > 0) {
+            // Keep reading until the header is complete or the file ends
+        }
+        if (header.hasRemaining()) {
+            return false;
+        }
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        int recordSize = header.getInt();
+        if (magic != RecognitionJournal.MAGIC
+                || version != RecognitionJournal.VERSION
+                || recordSize != RecognitionEvent.RECORD_SIZE) {
+            Log.w(TAG, "Skipping unreadable journal segment " + segment);
+            return false;
+        }
+        return true;
+    }
+
+    static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> segments = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().startsWith(RecognitionJournal.SEGMENT_PREFIX)
+                    && file.getName().endsWith(RecognitionJournal.SEGMENT_SUFFIX)
+                    && RecognitionJournal.segmentIndex(file) > 0) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments, (a, b) -> Integer.compare(
+                RecognitionJournal.segmentIndex(a), RecognitionJournal.segmentIndex(b)));
+        return segments;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.facerecognition.recognition;
+
+import com.example.facerecognition.utils.EmbeddingUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Enrolled identities searched with centroid pruning. By the triangle inequality every
+ * template of an identity is at least distance(query, centroid) - radius away from the
+ * query, so identities whose bound is already above the threshold (or above the best
+ * match so far) are skipped without comparing any of their templates.
+ */
+public class FaceGallery {
+
+    // Absorbs float rounding so pruning never drops a template that would have matched
+    private static final float PRUNE_EPSILON = 1e-4f;
+
+    private final Map<String, FaceIdentity> identities = new LinkedHashMap<>();
+    private int templateCount = 0;
+
+    private long searches;
+    private long comparisons;
+    private long exhaustiveComparisons;
+    private long prunedIdentities;
+
+    // Reused by every search, guarded by the gallery lock
+    private FaceIdentity[] candidateScratch = new FaceIdentity[0];
+    private float[] boundScratch = new float[0];
+    private long[] orderScratch = new long[0];
+
+    public static class Match {
+        private final FaceIdentity identity;
+        private final float distance;
+
+        Match(FaceIdentity identity, float distance) {
+            this.identity = identity;
+            this.distance = distance;
+        }
+
+        public FaceIdentity getIdentity() {
+            return identity;
+        }
+
+        public float getDistance() {
+            return distance;
+        }
+    }
+
+    public synchronized FaceIdentity enroll(String identityId, float[] embedding) {
+        FaceIdentity identity = identities.get(identityId);
+        if (identity == null) {
+            identity = new FaceIdentity(identityId);
+            identities.put(identityId, identity);
+        }
+        identity.addTemplate(embedding);
+        templateCount++;
+        return identity;
+    }
+
+    public synchronized void remove(String identityId) {
+        FaceIdentity identity = identities.remove(identityId);
+        if (identity != null) {
+            templateCount -= identity.getTemplateCount();
+        }
+    }
+
+    public synchronized void clear() {
+        identities.clear();
+        templateCount = 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return identities.isEmpty();
+    }
+
+    /**
+     * Returns the closest template match within the threshold, or null if there is none.
+     */
+    public synchronized Match search(float[] query, float threshold) {
+        if (query == null || identities.isEmpty()) {
+            return null;
+        }
+        int identityCount = identities.size();
+        ensureScratchCapacity(identityCount);
+        FaceIdentity[] candidates = candidateScratch;
+        float[] lowerBounds = boundScratch;
+        long[] order = orderScratch;
+        int index = 0;
+        for (FaceIdentity identity : identities.values()) {
+            float centroidDistance = EmbeddingUtils.calculateDistance(query, identity.getCentroid());
+            if (centroidDistance < 0) {
+                // Embedding size mismatch, the identity can never match
+                centroidDistance = Float.POSITIVE_INFINITY;
+            }
+            candidates[index] = identity;
+            lowerBounds[index] = centroidDistance - identity.getRadius() - PRUNE_EPSILON;
+            order[index] = sortKey(lowerBounds[index], index);
+            index++;
+        }
+        long searchComparisons = identityCount;
+
+        // Visit the most promising identities first so the best distance tightens early
+        Arrays.sort(order, 0, identityCount);
+
+        FaceIdentity bestIdentity = null;
+        float bestDistance = threshold;
+        for (int i = 0; i < identityCount; i++) {
+            int candidate = (int) order[i];
+            if (lowerBounds[candidate] > bestDistance) {
+                // Bounds are sorted, so none of the remaining identities can match either
+                prunedIdentities += identityCount - i;
+                break;
+            }
+            FaceIdentity identity = candidates[candidate];
+            for (int t = 0; t < identity.getTemplateCount(); t++) {
+                float distance = EmbeddingUtils.calculateDistance(query, identity.getTemplate(t));
+                searchComparisons++;
+                if (distance >= 0 && distance <= bestDistance) {
+                    bestDistance = distance;
+                    bestIdentity = identity;
+                }
+            }
+        }
+
+        // Do not keep removed identities reachable through the scratch array
+        Arrays.fill(candidates, 0, identityCount, null);
+        searches++;
+        comparisons += searchComparisons;
+        exhaustiveComparisons += templateCount;
+        return bestIdentity != null ? new Match(bestIdentity, bestDistance) : null;
+    }
+
+    private void ensureScratchCapacity(int identityCount) {
+        if (candidateScratch.length < identityCount) {
+            int capacity = Math.max(identityCount, candidateScratch.length * 2);
+            candidateScratch = new FaceIdentity[capacity];
+            boundScratch = new float[capacity];
+            orderScratch = new long[capacity];
+        }
+    }
+
+    /**
+     * Packs a bound and a candidate index into a long whose natural order is the order of
+     * the bounds, so candidates sort as primitives. The float bits are flipped for negative
+     * values so that they compare as signed integers in float order.
+     */
+    static long sortKey(float bound, int index) {
+        int bits = Float.floatToIntBits(bound);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return ((long) bits << 32) | index;
+    }
+
+    public synchronized List<FaceIdentity> getIdentities() {
+        return new ArrayList<>(identities.values());
+    }
+
+    public synchronized int getTemplateCount() {
+        return templateCount;
+    }
+
+    /**
+     * Comparisons saved against comparing the query with every template. Centroid
+     * comparisons count as spent, so this can be negative for tiny galleries.
+     */
+    public synchronized long getSavedComparisons() {
+        return exhaustiveComparisons - comparisons;
+    }
+
+    public synchronized String getStats() {
+        return "searches=" + searches
+                + ", comparisons=" + comparisons
+                + ", exhaustive=" + exhaustiveComparisons
+                + ", saved=" + getSavedComparisons()
+                + ", prunedIdentities=" + prunedIdentities;
+    }
+}
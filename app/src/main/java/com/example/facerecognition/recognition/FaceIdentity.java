@@ -0,0 +1,76 @@
+package com.example.facerecognition.recognition;
+
+import com.example.facerecognition.utils.EmbeddingUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An enrolled person with several embedding templates. The centroid and radius (largest
+ * template distance from the centroid) let a search skip the whole identity at once.
+ */
+public class FaceIdentity {
+
+    private final String id;
+    private final List<float[]> templates = new ArrayList<>();
+    private float[] centroid;
+    private float radius;
+
+    public FaceIdentity(String id) {
+        this.id = id;
+    }
+
+    public void addTemplate(float[] embedding) {
+        if (centroid != null && centroid.length != embedding.length) {
+            throw new IllegalArgumentException("Template size " + embedding.length
+                    + " does not match identity embedding size " + centroid.length);
+        }
+        templates.add(embedding.clone());
+        updateCentroidAndRadius();
+    }
+
+    private void updateCentroidAndRadius() {
+        int embeddingSize = templates.get(0).length;
+        float[] sum = new float[embeddingSize];
+        for (float[] template : templates) {
+            for (int i = 0; i < embeddingSize; i++) {
+                sum[i] += template[i];
+            }
+        }
+        for (int i = 0; i < embeddingSize; i++) {
+            sum[i] /= templates.size();
+        }
+        centroid = sum;
+
+        float maxDistance = 0.0f;
+        for (float[] template : templates) {
+            maxDistance = Math.max(maxDistance, EmbeddingUtils.calculateDistance(template, centroid));
+        }
+        radius = maxDistance;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<float[]> getTemplates() {
+        return Collections.unmodifiableList(templates);
+    }
+
+    float[] getTemplate(int index) {
+        return templates.get(index);
+    }
+
+    public int getTemplateCount() {
+        return templates.size();
+    }
+
+    public float[] getCentroid() {
+        return centroid;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.facerecognition.recognition;
+
+import java.util.List;
+
+/**
+ * Receives recognition results on the main thread, at most once per display frame.
+ */
+public interface RecognitionListener {
+
+    /**
+     * Called with the latest result of every track that changed since the previous call.
+     */
+    void onRecognitionResults(List<RecognitionResult> results);
+}
@@ -0,0 +1,55 @@
+package com.example.facerecognition.recognition;
+
+/**
+ * Outcome of recognizing one tracked face in one camera frame.
+ */
+public class RecognitionResult {
+
+    // Also what the journal records for faces without a tracking id
+    public static final int NO_TRACK_ID = -1;
+
+    private final int trackId;
+    private final String identityId;
+    private final float distance;
+    private final long createdAtNs;
+
+    public RecognitionResult(int trackId, FaceGallery.Match match) {
+        this.trackId = trackId;
+        this.identityId = match != null ? match.getIdentity().getId() : null;
+        this.distance = match != null ? match.getDistance() : Float.NaN;
+        this.createdAtNs = System.nanoTime();
+    }
+
+    public int getTrackId() {
+        return trackId;
+    }
+
+    /**
+     * False when the detector did not assign a tracking id, e.g. tracking is disabled.
+     */
+    public boolean hasTrackId() {
+        return trackId != NO_TRACK_ID;
+    }
+
+    public boolean isMatched() {
+        return identityId != null;
+    }
+
+    /**
+     * Null when the face did not match any identity.
+     */
+    public String getIdentityId() {
+        return identityId;
+    }
+
+    public float getDistance() {
+        return distance;
+    }
+
+    /**
+     * System.nanoTime() at which the result was produced, used for delivery latency.
+     */
+    public long getCreatedAtNs() {
+        return createdAtNs;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.facerecognition.recognition;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Hands recognition results from the recognition code to a RecognitionListener on the
+ * main thread. Results are coalesced per track: only the newest result of each track
+ * pending in a frame interval is delivered, and delivery happens in a single
+ * Choreographer frame callback so the UI is updated at most once per display refresh.
+ * Results older than the last one delivered for the same track are dropped. Results
+ * without a track id cannot be told apart, so each of them is delivered.
+ */
+public class RecognitionResultDispatcher implements Choreographer.FrameCallback {
+
+    // Bounds the per-track bookkeeping when many faces come and go
+    private static final int MAX_TRACKED_IDS = 64;
+    // Bounds untracked results piling up while frames are not being drawn
+    private static final int MAX_UNTRACKED_PENDING = 32;
+
+    private final Choreographer choreographer;
+    private final Object lock = new Object();
+    private Map<Integer, RecognitionResult> pending = new LinkedHashMap<>();
+    private List<RecognitionResult> pendingUntracked = new ArrayList<>();
+    private final Map<Integer, Long> lastDeliveredNs = new LinkedHashMap<Integer, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+            return size() > MAX_TRACKED_IDS;
+        }
+    };
+    private RecognitionListener listener;
+    private boolean frameScheduled = false;
+
+    private long posted;
+    private long delivered;
+    private long coalesced;
+    private long dropped;
+    private long uiUpdates;
+    private long totalLatencyNs;
+    private long maxLatencyNs;
+
+    /**
+     * Must be created on the main thread, the Choreographer is bound to the calling looper.
+     */
+    public RecognitionResultDispatcher(RecognitionListener listener) {
+        this.choreographer = Choreographer.getInstance();
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a result for delivery. Safe to call from any thread and never blocks on the UI.
+     */
+    public void post(RecognitionResult result) {
+        synchronized (lock) {
+            posted++;
+            if (listener == null) {
+                dropped++;
+                return;
+            }
+            if (!result.hasTrackId()) {
+                if (pendingUntracked.size() == MAX_UNTRACKED_PENDING) {
+                    pendingUntracked.remove(0);
+                    dropped++;
+                }
+                pendingUntracked.add(result);
+                scheduleFrame();
+                return;
+            }
+            Long lastDelivered = lastDeliveredNs.get(result.getTrackId());
+            if (lastDelivered != null && result.getCreatedAtNs() < lastDelivered) {
+                dropped++;
+                return;
+            }
+            RecognitionResult previous = pending.put(result.getTrackId(), result);
+            if (previous != null) {
+                if (previous.getCreatedAtNs() > result.getCreatedAtNs()) {
+                    // Arrived out of order, keep the newer pending result
+                    pending.put(previous.getTrackId(), previous);
+                    dropped++;
+                    return;
+                }
+                coalesced++;
+            }
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        List<RecognitionResult> results;
+        RecognitionListener currentListener;
+        synchronized (lock) {
+            frameScheduled = false;
+            if ((pending.isEmpty() && pendingUntracked.isEmpty()) || listener == null) {
+                return;
+            }
+            results = new ArrayList<>(pending.size() + pendingUntracked.size());
+            results.addAll(pending.values());
+            results.addAll(pendingUntracked);
+            pending = new LinkedHashMap<>();
+            pendingUntracked = new ArrayList<>();
+            currentListener = listener;
+
+            long now = System.nanoTime();
+            for (RecognitionResult result : results) {
+                long latencyNs = now - result.getCreatedAtNs();
+                totalLatencyNs += latencyNs;
+                maxLatencyNs = Math.max(maxLatencyNs, latencyNs);
+                if (result.hasTrackId()) {
+                    lastDeliveredNs.put(result.getTrackId(), result.getCreatedAtNs());
+                }
+            }
+            delivered += results.size();
+            uiUpdates++;
+        }
+        currentListener.onRecognitionResults(results);
+    }
+
+    /**
+     * Stops delivery. Results posted afterwards are counted as dropped.
+     */
+    public void stop() {
+        synchronized (lock) {
+            listener = null;
+            dropped += pending.size() + pendingUntracked.size();
+            pending.clear();
+            pendingUntracked.clear();
+            if (frameScheduled) {
+                choreographer.removeFrameCallback(this);
+                frameScheduled = false;
+            }
+        }
+    }
+
+    public long getCoalescedCount() {
+        synchronized (lock) {
+            return coalesced;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    public float getAverageLatencyMs() {
+        synchronized (lock) {
+            return delivered == 0 ? 0.0f : totalLatencyNs / (delivered * 1e6f);
+        }
+    }
+
+    public float getMaxLatencyMs() {
+        synchronized (lock) {
+            return maxLatencyNs / 1e6f;
+        }
+    }
+
+    public String getStats() {
+        synchronized (lock) {
+            return "posted=" + posted
+                    + ", delivered=" + delivered
+                    + ", coalesced=" + coalesced
+                    + ", dropped=" + dropped
+                    + ", uiUpdates=" + uiUpdates
+                    + ", avgLatency=" + String.format(Locale.US, "%.2f", getAverageLatencyMs()) + "ms"
+                    + ", maxLatency=" + String.format(Locale.US, "%.2f", getMaxLatencyMs()) + "ms";
+        }
+    }
+}
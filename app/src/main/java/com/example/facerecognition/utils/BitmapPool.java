@@ -0,0 +1,219 @@
+package com.example.facerecognition.utils;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Size-bucketed pool of mutable bitmaps shared by the camera path and the image decoders.
+ * Bitmaps are bucketed by allocation size so a larger buffer can be reconfigured for a
+ * smaller request, which is also what BitmapFactory needs for inBitmap reuse.
+ */
+public class BitmapPool {
+
+    private static final String TAG = "BitmapPool";
+    // Do not hand out a buffer more than this many times larger than the request
+    private static final int MAX_SIZE_MULTIPLE = 4;
+    // Fraction of the heap the pool may keep on hold
+    private static final int HEAP_FRACTION = 8;
+
+    private static BitmapPool instance;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    private final long maxSize;
+    private long currentSize;
+
+    private long hits;
+    private long misses;
+    private long puts;
+    private long evictions;
+    // Bytes of bitmaps handed out and not yet returned, plus currentSize is the bitmap memory in use
+    private long outstandingSize;
+    private long peakBitmapBytes;
+
+    public BitmapPool(long maxSizeBytes) {
+        this.maxSize = maxSizeBytes;
+    }
+
+    public static synchronized BitmapPool getInstance() {
+        if (instance == null) {
+            instance = new BitmapPool(Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a mutable bitmap with the given dimensions and config. The content is not cleared.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = getDirtyOrNull(width, height, config);
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+            recordAllocation(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns a pooled bitmap large enough for the given dimensions, or null on a miss.
+     * Intended for BitmapFactory.Options.inBitmap, which reconfigures the buffer itself.
+     */
+    public synchronized Bitmap getDirtyOrNull(int width, int height, Bitmap.Config config) {
+        int size = getBitmapByteSize(width, height, config);
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(size);
+        while (entry != null && entry.getKey() <= size * MAX_SIZE_MULTIPLE) {
+            Bitmap bitmap = entry.getValue().pollLast();
+            if (entry.getValue().isEmpty()) {
+                buckets.remove(entry.getKey());
+            }
+            if (bitmap != null) {
+                currentSize -= entry.getKey();
+            }
+            if (bitmap != null && !bitmap.isRecycled()) {
+                try {
+                    bitmap.reconfigure(width, height, config);
+                    hits++;
+                    outstandingSize += entry.getKey();
+                    updatePeak();
+                    return bitmap;
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Could not reconfigure pooled bitmap: " + e.getMessage());
+                    bitmap.recycle();
+                }
+            }
+            entry = buckets.ceilingEntry(size);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Hands a bitmap back to the pool. Bitmaps that cannot be reused are recycled instead.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        // Bitmaps the pool never saw are not in outstandingSize, do not let it go negative
+        outstandingSize = Math.max(0, outstandingSize - size);
+        if (!bitmap.isMutable() || size > maxSize) {
+            bitmap.recycle();
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        currentSize += size;
+        puts++;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Shrinks the pool in response to ComponentCallbacks2.onTrimMemory.
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize / 2);
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(long size) {
+        // Evict the largest buffers first, they are the cheapest to give back per bitmap
+        while (currentSize > size && !buckets.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.lastEntry();
+            Bitmap bitmap = entry.getValue().pollFirst();
+            if (entry.getValue().isEmpty()) {
+                buckets.remove(entry.getKey());
+            }
+            if (bitmap != null) {
+                currentSize -= entry.getKey();
+                evictions++;
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Accounts for a bitmap that was allocated outside the pool, e.g. a decode that could
+     * not reuse a pooled buffer, so the peak covers it once it is handed back with put.
+     */
+    synchronized void recordAllocation(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        outstandingSize += bitmap.getAllocationByteCount();
+        updatePeak();
+    }
+
+    private void updatePeak() {
+        peakBitmapBytes = Math.max(peakBitmapBytes, outstandingSize + currentSize);
+    }
+
+    public synchronized float getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0f : (float) hits / requests;
+    }
+
+    /**
+     * Peak of the bitmap memory handed out by the pool plus the memory it holds.
+     */
+    public synchronized long getPeakBitmapBytes() {
+        return peakBitmapBytes;
+    }
+
+    public synchronized long getCurrentSize() {
+        return currentSize;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized String getStats() {
+        return "hits=" + hits
+                + ", misses=" + misses
+                + ", hitRate=" + String.format(Locale.US, "%.2f", getHitRate())
+                + ", puts=" + puts
+                + ", evictions=" + evictions
+                + ", pooled=" + currentSize / 1024 + "KB/" + maxSize / 1024 + "KB"
+                + ", inUse=" + outstandingSize / 1024 + "KB"
+                + ", peakBitmaps=" + peakBitmapBytes / 1024 + "KB";
+    }
+
+    static int getBitmapByteSize(int width, int height, Bitmap.Config config) {
+        return width * height * getBytesPerPixel(config);
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == null) {
+            return 4;
+        }
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case ARGB_8888:
+            default:
+                return 4;
+        }
+    }
+}
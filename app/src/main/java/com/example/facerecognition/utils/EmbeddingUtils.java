@@ -0,0 +1,15 @@
+package com.example.facerecognition.utils;
+
+public class EmbeddingUtils {
+
+    public static float calculateDistance(float[] embedding1, float[] embedding2) {
+        if (embedding1 == null || embedding2 == null || embedding1.length != embedding2.length) {
+            return -1.0f; // Or handle error appropriately
+        }
+        float distance = 0;
+        for (int i = 0; i < embedding1.length; i++) {
+            distance += (embedding1[i] - embedding2[i]) * (embedding1[i] - embedding2[i]);
+        }
+        return (float) Math.sqrt(distance);
+    }
+}
@@ -6,7 +6,6 @@ import android.graphics.*;
 import android.media.ExifInterface;
 import android.media.Image;
 import android.net.Uri;
-import android.util.Log;
 
 import androidx.camera.core.ImageProxy;
 import com.example.facerecognition.DisplayImageActivity;
@@ -20,8 +19,6 @@ import java.nio.ByteOrder;
 
 public class ImageUtils {
 
-    private static final String TAG = "ImageUtils";
-
     public static Bitmap imageProxyToBitmap(ImageProxy imageProxy) throws Exception {
         Bitmap bitmap = null;
         switch (imageProxy.getFormat()) {
@@ -62,14 +59,37 @@ public class ImageUtils {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 100, out);
         byte[] imageBytes = out.toByteArray();
-        return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+        return decodePooled(imageBytes, imageProxy.getWidth(), imageProxy.getHeight());
     }
 
     private static Bitmap jpegToBitmap(ImageProxy imageProxy) {
         ByteBuffer buffer = imageProxy.getPlanes()[0].getBuffer();
         byte[] bytes = new byte[buffer.remaining()];
         buffer.get(bytes);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        return decodePooled(bytes, imageProxy.getWidth(), imageProxy.getHeight());
+    }
+
+    private static Bitmap decodePooled(byte[] bytes, int width, int height) {
+        BitmapPool pool = BitmapPool.getInstance();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        options.inBitmap = pool.getDirtyOrNull(width, height, Bitmap.Config.ARGB_8888);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled buffer did not fit the decoded image, decode into a fresh one
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+        if (bitmap == null) {
+            // Corrupt data, the pooled buffer was handed out but not used
+            pool.put(options.inBitmap);
+        } else if (bitmap != options.inBitmap) {
+            pool.recordAllocation(bitmap);
+        }
+        return bitmap;
     }
 
     public static Bitmap uriToBitmap(Context context, Uri imageUri) throws IOException {
@@ -80,96 +100,222 @@ public class ImageUtils {
         ContentResolver contentResolver = context.getContentResolver();
         InputStream inputStream = null;
         Bitmap bitmap = null;
-        // First, decode the bitmap
+        // Read the dimensions first so the decode can be subsampled and reuse a pooled buffer
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
         inputStream = contentResolver.openInputStream(imageUri);
         if (inputStream != null) {
-            bitmap = BitmapFactory.decodeStream(inputStream);
-            // Close the stream after decoding, as we might open another for Exif
+            BitmapFactory.decodeStream(inputStream, null, options);
             inputStream.close();
+            inputStream = null;
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        BitmapPool pool = BitmapPool.getInstance();
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, pool.getMaxSize());
+        options.inMutable = true;
+        int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        options.inBitmap = pool.getDirtyOrNull(sampledWidth, sampledHeight, Bitmap.Config.ARGB_8888);
+
+        // Then decode the bitmap
+        inputStream = contentResolver.openInputStream(imageUri);
+        if (inputStream != null) {
+            try {
+                bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled buffer could not be reused, the stream is consumed so reopen it
+                inputStream.close();
+                pool.put(options.inBitmap);
+                options.inBitmap = null;
+                inputStream = contentResolver.openInputStream(imageUri);
+                if (inputStream != null) {
+                    bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+                }
+            }
+            // Close the stream after decoding, as we might open another for Exif
+            if (inputStream != null) {
+                inputStream.close();
+            }
             inputStream = null; // Set to null to avoid closing again in finally
         }
+        if (bitmap == null) {
+            // Nothing was decoded, e.g. a truncated file, give the pooled buffer back
+            pool.put(options.inBitmap);
+        } else if (bitmap != options.inBitmap) {
+            pool.recordAllocation(bitmap);
+        }
 
         // If bitmap was decoded successfully, read Exif orientation
         if (bitmap != null) {
-            inputStream = contentResolver.openInputStream(imageUri); // Open a new stream for ExifInterface
-            if (inputStream != null) {
-                ExifInterface exifInterface = new ExifInterface(inputStream);
-                int orientation = exifInterface.getAttributeInt(
-                        ExifInterface.TAG_ORIENTATION,
-                        ExifInterface.ORIENTATION_NORMAL);
-
-                int rotationDegrees = 0;
-                switch (orientation) {
-                    case ExifInterface.ORIENTATION_ROTATE_90:
-                        rotationDegrees = 90;
-                        break;
-                    case ExifInterface.ORIENTATION_ROTATE_180:
-                        rotationDegrees = 180;
-                        break;
-                    case ExifInterface.ORIENTATION_ROTATE_270:
-                        rotationDegrees = 270;
-                        break;
-                    default:
-                        break;
-                }
-                bitmap = rotateBitmap(bitmap, rotationDegrees);
-            }
+            bitmap = rotateBitmap(bitmap, getExifRotationDegrees(contentResolver, imageUri));
         }
-        if (inputStream != null) {
+
+        return bitmap;
+    }
+
+    /**
+     * Decodes a Uri subsampled so that its shorter side is still at least minSize pixels,
+     * which keeps thumbnail decodes far below full resolution. Exif rotation is applied.
+     */
+    public static Bitmap decodeSampledBitmap(Context context, Uri imageUri, int minSize) throws IOException {
+        ContentResolver contentResolver = context.getContentResolver();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream inputStream = contentResolver.openInputStream(imageUri);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
             inputStream.close();
         }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
 
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        int shorterSide = Math.min(options.outWidth, options.outHeight);
+        while (shorterSide / (options.inSampleSize * 2) >= minSize) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap bitmap;
+        inputStream = contentResolver.openInputStream(imageUri);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            inputStream.close();
+        }
+        BitmapPool.getInstance().recordAllocation(bitmap);
+        if (bitmap != null) {
+            bitmap = rotateBitmap(bitmap, getExifRotationDegrees(contentResolver, imageUri));
+        }
         return bitmap;
     }
 
+    private static int getExifRotationDegrees(ContentResolver contentResolver, Uri imageUri) throws IOException {
+        InputStream inputStream = contentResolver.openInputStream(imageUri); // Open a new stream for ExifInterface
+        if (inputStream == null) {
+            return 0;
+        }
+        try {
+            ExifInterface exifInterface = new ExifInterface(inputStream);
+            int orientation = exifInterface.getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Picks the smallest power-of-two sample size that keeps the decoded ARGB_8888 bitmap
+     * within the given byte budget.
+     */
+    public static int calculateInSampleSize(int width, int height, long maxBytes) {
+        int inSampleSize = 1;
+        while ((long) (width / inSampleSize) * (height / inSampleSize) * 4 > maxBytes) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
     public static Bitmap rotateBitmap(Bitmap bitmap, int rotationDegrees) {
         if (rotationDegrees == 0) return bitmap;
 
         Matrix matrix = new Matrix();
         matrix.postRotate(rotationDegrees);
-        // Create a new bitmap with the rotation applied
-        Bitmap rotatedBitmap = Bitmap.createBitmap(
-                bitmap,
-                0,
-                0,
-                bitmap.getWidth(),
-                bitmap.getHeight(),
-                matrix,
-                true // Filter to smooth the rotation
+        // Move the rotated image back to the origin
+        RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+
+        // Draw into a pooled bitmap instead of allocating a new one with Bitmap.createBitmap
+        Bitmap rotatedBitmap = BitmapPool.getInstance().get(
+                Math.round(bounds.width()),
+                Math.round(bounds.height()),
+                getConfig(bitmap)
         );
-        // Recycle the original bitmap to free up memory
-        bitmap.recycle();
-        bitmap = rotatedBitmap; // Use the rotated bitmap
-        return bitmap;
+        if (rotationDegrees % 90 != 0) {
+            // The corners are not covered by the rotated image
+            rotatedBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        Canvas canvas = new Canvas(rotatedBitmap);
+        canvas.drawBitmap(bitmap, matrix, newReplacePaint()); // Filter to smooth the rotation
+        // Return the original bitmap to the pool to free up memory
+        BitmapPool.getInstance().put(bitmap);
+        return rotatedBitmap;
     }
 
-    public static Bitmap cropBitmap(Bitmap bitmap, Rect rect) {
-        if(bitmap == null) return null;
+    /**
+     * Crops and scales in a single draw into a pooled bitmap, without an intermediate crop.
+     * The result should be handed back with BitmapPool.put once it is no longer needed.
+     */
+    public static Bitmap cropAndScaleBitmap(Bitmap originalBitmap, Rect boundingBox, int targetWidth, int targetHeight) {
+        if (originalBitmap == null) return null;
 
-        try {
-            int x = Math.max(0, rect.left);
-            int y = Math.max(0, rect.top);
-            int width = Math.min(bitmap.getWidth() - x, rect.width());
-            int height = Math.min(bitmap.getHeight() - y, rect.height());
-            if (width > 0 && height > 0) {
-                return Bitmap.createBitmap(bitmap, x, y, width, height);
-            }
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Error cropping bitmap: " + e.getMessage());
+        int x = Math.max(0, boundingBox.left);
+        int y = Math.max(0, boundingBox.top);
+        int width = Math.min(originalBitmap.getWidth() - x, boundingBox.width());
+        int height = Math.min(originalBitmap.getHeight() - y, boundingBox.height());
+        if (width <= 0 || height <= 0) {
+            return null;
         }
-        return null;
+        return drawScaled(originalBitmap, new Rect(x, y, x + width, y + height), targetWidth, targetHeight);
     }
 
-    public static Bitmap cropAndScaleBitmap(Bitmap originalBitmap, Rect boundingBox, int targetWidth, int targetHeight) {
-        Bitmap croppedBitmap = cropBitmap(originalBitmap, boundingBox);
-        if (croppedBitmap != null) {
-            return Bitmap.createScaledBitmap(croppedBitmap, targetWidth, targetHeight, true);
-        }
-        return null;
+    private static Bitmap drawScaled(Bitmap source, Rect sourceRect, int targetWidth, int targetHeight) {
+        Bitmap scaledBitmap = BitmapPool.getInstance().get(targetWidth, targetHeight, getConfig(source));
+        Canvas canvas = new Canvas(scaledBitmap);
+        canvas.drawBitmap(
+                source,
+                sourceRect,
+                new Rect(0, 0, targetWidth, targetHeight),
+                newReplacePaint()
+        );
+        return scaledBitmap;
+    }
+
+    /**
+     * Pooled buffers keep the pixels of their previous use, so draw with SRC to replace them
+     * instead of blending a transparent source over the old content.
+     */
+    private static Paint newReplacePaint() {
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        return paint;
+    }
+
+    private static Bitmap.Config getConfig(Bitmap bitmap) {
+        Bitmap.Config config = bitmap.getConfig();
+        return config != null ? config : Bitmap.Config.ARGB_8888;
     }
 
     public static ByteBuffer preprocessImage(Bitmap bitmap, int inputWidth, int inputHeight) {
-        Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, inputWidth, inputHeight, true);
+        // Faces from cropAndScaleBitmap already have the input size, only scale other bitmaps
+        boolean needsScaling = bitmap.getWidth() != inputWidth || bitmap.getHeight() != inputHeight;
+        Bitmap scaledBitmap = needsScaling
+                ? drawScaled(bitmap, new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()), inputWidth, inputHeight)
+                : bitmap;
         ByteBuffer imgData = ByteBuffer.allocateDirect(inputWidth * inputHeight * 3 * 4);
         imgData.order(ByteOrder.nativeOrder());
         int[] intValues = new int[inputWidth * inputHeight];
@@ -186,6 +332,9 @@ public class ImageUtils {
                 imgData.putFloat((((val) & 0xFF) - mean) / std);     // Blue
             }
         }
+        if (needsScaling) {
+            BitmapPool.getInstance().put(scaledBitmap);
+        }
         return imgData;
     }
 
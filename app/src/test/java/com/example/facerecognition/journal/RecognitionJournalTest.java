@@ -0,0 +1,121 @@
+package com.example.facerecognition.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes enough events through a small ring and small segments to exercise ring
+ * wraparound, batches split across segments, byte-budget retention and the reader's
+ * handling of a torn last record.
+ */
+public class RecognitionJournalTest {
+
+    private static final int CAPACITY = 50;
+    private static final int BATCH_SIZE = 16;
+    private static final long FLUSH_INTERVAL_MS = 5;
+    // Not a whole number of records past the header, so batches are split across segments
+    private static final long SEGMENT_BYTES = RecognitionJournal.HEADER_SIZE + 10 * RecognitionEvent.RECORD_SIZE + 20;
+    private static final int EVENT_COUNT = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readAll_returnsCompleteRecordsInOrder() throws Exception {
+        File directory = folder.newFolder("journal");
+        RecognitionJournal journal = new RecognitionJournal(directory, CAPACITY, BATCH_SIZE,
+                FLUSH_INTERVAL_MS, SEGMENT_BYTES, Long.MAX_VALUE);
+        journal.start();
+        appendEvents(journal, EVENT_COUNT);
+        journal.close();
+
+        List<File> segments = RecognitionJournalReader.listSegments(directory);
+        assertTrue(segments.size() > 1);
+        for (File segment : segments) {
+            assertTrue(segment.length() <= SEGMENT_BYTES);
+            assertEquals(0, (segment.length() - RecognitionJournal.HEADER_SIZE) % RecognitionEvent.RECORD_SIZE);
+        }
+
+        // Tear the last record as an interrupted write would
+        File last = segments.get(segments.size() - 1);
+        RandomAccessFile file = new RandomAccessFile(last, "rw");
+        try {
+            file.setLength(last.length() - RecognitionEvent.RECORD_SIZE / 2);
+        } finally {
+            file.close();
+        }
+
+        List<RecognitionEvent> events = new RecognitionJournalReader(directory).readAll();
+        assertEquals(EVENT_COUNT - 1, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEvent(i, events.get(i));
+        }
+    }
+
+    @Test
+    public void oldSegments_areDeletedPastTheByteBudget() throws Exception {
+        File directory = folder.newFolder("journal");
+        long maxTotalBytes = 3 * SEGMENT_BYTES;
+        RecognitionJournal journal = new RecognitionJournal(directory, CAPACITY, BATCH_SIZE,
+                FLUSH_INTERVAL_MS, SEGMENT_BYTES, maxTotalBytes);
+        journal.start();
+        appendEvents(journal, EVENT_COUNT);
+        journal.close();
+
+        // Retention runs when a segment is opened, so only the older segments are bounded
+        List<File> segments = RecognitionJournalReader.listSegments(directory);
+        long olderBytes = 0;
+        for (File segment : segments.subList(0, segments.size() - 1)) {
+            olderBytes += segment.length();
+        }
+        assertTrue(olderBytes <= maxTotalBytes);
+
+        // What is left is the newest events, without gaps
+        List<RecognitionEvent> events = new RecognitionJournalReader(directory).readAll();
+        assertTrue(events.size() < EVENT_COUNT);
+        int first = EVENT_COUNT - events.size();
+        for (int i = 0; i < events.size(); i++) {
+            assertEvent(first + i, events.get(i));
+        }
+    }
+
+    @Test
+    public void readAll_ignoresSegmentsWithoutCompleteHeader() throws IOException {
+        File directory = folder.newFolder("journal");
+        File segment = new File(directory, RecognitionJournal.segmentName(1));
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.writeInt(RecognitionJournal.MAGIC);
+        } finally {
+            file.close();
+        }
+        assertTrue(new RecognitionJournalReader(directory).readAll().isEmpty());
+    }
+
+    private static void appendEvents(RecognitionJournal journal, int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            // Wait for the writer instead of dropping, so every event is expected in the output
+            while (!journal.append(i, i % 5, "person" + (i % 7), i * 0.5f, i + 1, i + 2, i + 3)) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void assertEvent(int i, RecognitionEvent event) {
+        assertEquals(i, event.getTimestampMs());
+        assertEquals(i % 5, event.getTrackId());
+        assertEquals("person" + (i % 7), event.getIdentityId());
+        assertEquals(i * 0.5f, event.getDistance(), 0.0f);
+        assertEquals(i + 1, event.getDetectionLatencyUs());
+        assertEquals(i + 2, event.getEmbeddingLatencyUs());
+        assertEquals(i + 3, event.getSearchLatencyUs());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.facerecognition.recognition;
+
+import com.example.facerecognition.utils.EmbeddingUtils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that centroid pruning never changes the search result and that the saved
+ * comparison count matches what the pruned search actually skipped.
+ */
+public class FaceGalleryTest {
+
+    private static final int EMBEDDING_SIZE = 16;
+
+    @Test
+    public void prunedSearch_matchesExhaustiveSearch() {
+        Random random = new Random(42);
+        FaceGallery gallery = new FaceGallery();
+        for (int i = 0; i < 50; i++) {
+            float[] center = randomEmbedding(random, 2.0f);
+            int templates = 1 + random.nextInt(5);
+            for (int t = 0; t < templates; t++) {
+                gallery.enroll("person" + i, jitter(random, center, 0.3f));
+            }
+        }
+
+        for (int q = 0; q < 500; q++) {
+            float[] query = randomEmbedding(random, 2.0f);
+            float threshold = 0.5f + random.nextFloat() * 4.0f;
+            FaceGallery.Match expected = exhaustiveSearch(gallery, query, threshold);
+            FaceGallery.Match actual = gallery.search(query, threshold);
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                assertNotNull(actual);
+                assertEquals(expected.getIdentity().getId(), actual.getIdentity().getId());
+                assertEquals(expected.getDistance(), actual.getDistance(), 0.0f);
+            }
+        }
+        assertTrue(gallery.getSavedComparisons() > 0);
+    }
+
+    @Test
+    public void savedComparisons_countsSkippedTemplates() {
+        FaceGallery gallery = new FaceGallery();
+        gallery.enroll("near", new float[]{0.0f, 0.0f});
+        gallery.enroll("near", new float[]{0.0f, 0.2f});
+        for (int t = 0; t < 4; t++) {
+            gallery.enroll("middle", new float[]{10.0f, t * 0.1f});
+            gallery.enroll("far", new float[]{20.0f, t * 0.1f});
+        }
+        assertEquals(10, gallery.getTemplateCount());
+
+        // 3 centroids plus the 2 templates of "near", the other identities are pruned
+        FaceGallery.Match match = gallery.search(new float[]{0.0f, 0.1f}, 1.0f);
+        assertNotNull(match);
+        assertEquals("near", match.getIdentity().getId());
+        assertEquals(0.1f, match.getDistance(), 1e-6f);
+        assertEquals(10 - 5, gallery.getSavedComparisons());
+
+        // Nothing is within the threshold, only the 3 centroids are compared
+        assertNull(gallery.search(new float[]{5.0f, 0.0f}, 1.0f));
+        assertEquals(10 - 5 + 10 - 3, gallery.getSavedComparisons());
+    }
+
+    @Test
+    public void sortKey_ordersLikeBounds() {
+        float[] bounds = {-3.5f, -0.0001f, 0.0f, 0.0001f, 1.0f, 2.5f, Float.POSITIVE_INFINITY};
+        for (int i = 1; i < bounds.length; i++) {
+            assertTrue(FaceGallery.sortKey(bounds[i - 1], 7) < FaceGallery.sortKey(bounds[i], 3));
+            assertEquals(i, (int) FaceGallery.sortKey(bounds[i], i));
+        }
+    }
+
+    private static FaceGallery.Match exhaustiveSearch(FaceGallery gallery, float[] query, float threshold) {
+        FaceGallery.Match best = null;
+        for (FaceIdentity identity : gallery.getIdentities()) {
+            for (float[] template : identity.getTemplates()) {
+                float distance = EmbeddingUtils.calculateDistance(query, template);
+                if (distance <= threshold && (best == null || distance < best.getDistance())) {
+                    best = new FaceGallery.Match(identity, distance);
+                }
+            }
+        }
+        return best;
+    }
+
+    private static float[] randomEmbedding(Random random, float scale) {
+        float[] embedding = new float[EMBEDDING_SIZE];
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            embedding[i] = (float) random.nextGaussian() * scale;
+        }
+        return embedding;
+    }
+
+    private static float[] jitter(Random random, float[] center, float scale) {
+        float[] embedding = center.clone();
+        for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            embedding[i] += (float) random.nextGaussian() * scale;
+        }
+        return embedding;
+    }
+}